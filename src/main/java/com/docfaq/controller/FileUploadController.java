@@ -1,7 +1,9 @@
 package com.docfaq.controller;
 
+import com.docfaq.model.SpoolStats;
 import com.docfaq.model.UploadResponse;
 import com.docfaq.service.FileUploadService;
+import com.docfaq.service.UploadSpoolService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -18,16 +20,21 @@ public class FileUploadController {
     @Autowired
     private FileUploadService fileUploadService;
 
+    @Autowired(required = false)
+    private UploadSpoolService uploadSpoolService;
+
     /**
      * Handles file upload requests.
      *
      * @param file the multipart file to upload
+     * @param tenantId the tenant uploading the file, taken from the X-Tenant-Id header
      * @return ResponseEntity containing the upload result
      */
     @PostMapping("/upload")
-    public ResponseEntity<UploadResponse> uploadFile(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<UploadResponse> uploadFile(@RequestParam("file") MultipartFile file,
+                                                     @RequestHeader(value = "X-Tenant-Id", required = false) String tenantId) {
         try {
-            UploadResponse response = fileUploadService.processFileUpload(file);
+            UploadResponse response = fileUploadService.processFileUpload(file, tenantId);
             
             if (response.isSuccess()) {
                 return ResponseEntity.ok(response);
@@ -50,4 +57,17 @@ public class FileUploadController {
     public ResponseEntity<String> getUploadStatus() {
         return ResponseEntity.ok("Upload service is running");
     }
+
+    /**
+     * Metrics endpoint for the write-behind upload spool.
+     *
+     * @return ResponseEntity containing the spool metrics, or 404 if the spool is disabled
+     */
+    @GetMapping("/upload/spool/stats")
+    public ResponseEntity<SpoolStats> getSpoolStats() {
+        if (uploadSpoolService == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(uploadSpoolService.getStats());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.docfaq.model;
+
+/**
+ * Snapshot of the upload staging spool metrics.
+ */
+public class SpoolStats {
+    private int depth;
+    private long pendingBytes;
+    private long stagedCount;
+    private long drainedCount;
+    private long failedAttempts;
+    private long deadLetterCount;
+    private int segmentCount;
+    private double drainRatePerSecond;
+
+    public SpoolStats() {}
+
+    public SpoolStats(int depth, long pendingBytes, long stagedCount, long drainedCount,
+                      long failedAttempts, long deadLetterCount, int segmentCount,
+                      double drainRatePerSecond) {
+        this.depth = depth;
+        this.pendingBytes = pendingBytes;
+        this.stagedCount = stagedCount;
+        this.drainedCount = drainedCount;
+        this.failedAttempts = failedAttempts;
+        this.deadLetterCount = deadLetterCount;
+        this.segmentCount = segmentCount;
+        this.drainRatePerSecond = drainRatePerSecond;
+    }
+
+    // Getters and setters
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public void setPendingBytes(long pendingBytes) {
+        this.pendingBytes = pendingBytes;
+    }
+
+    public long getStagedCount() {
+        return stagedCount;
+    }
+
+    public void setStagedCount(long stagedCount) {
+        this.stagedCount = stagedCount;
+    }
+
+    public long getDrainedCount() {
+        return drainedCount;
+    }
+
+    public void setDrainedCount(long drainedCount) {
+        this.drainedCount = drainedCount;
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    public void setFailedAttempts(long failedAttempts) {
+        this.failedAttempts = failedAttempts;
+    }
+
+    public long getDeadLetterCount() {
+        return deadLetterCount;
+    }
+
+    public void setDeadLetterCount(long deadLetterCount) {
+        this.deadLetterCount = deadLetterCount;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public void setSegmentCount(int segmentCount) {
+        this.segmentCount = segmentCount;
+    }
+
+    public double getDrainRatePerSecond() {
+        return drainRatePerSecond;
+    }
+
+    public void setDrainRatePerSecond(double drainRatePerSecond) {
+        this.drainRatePerSecond = drainRatePerSecond;
+    }
+}
@@ -9,6 +9,8 @@ public class UploadResponse {
     private String fileId;
     private String fileName;
     private long fileSize;
+    private String duplicateOf;
+    private Double similarity;
 
     public UploadResponse() {}
 
@@ -65,4 +67,20 @@ public class UploadResponse {
     public void setFileSize(long fileSize) {
         this.fileSize = fileSize;
     }
+
+    public String getDuplicateOf() {
+        return duplicateOf;
+    }
+
+    public void setDuplicateOf(String duplicateOf) {
+        this.duplicateOf = duplicateOf;
+    }
+
+    public Double getSimilarity() {
+        return similarity;
+    }
+
+    public void setSimilarity(Double similarity) {
+        this.similarity = similarity;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.docfaq.service;
 
 import com.docfaq.model.UploadResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -8,6 +10,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Service for handling file upload operations and validation.
@@ -15,19 +18,56 @@ import java.util.List;
 @Service
 public class FileUploadService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileUploadService.class);
+
     private static final List<String> ALLOWED_EXTENSIONS = Arrays.asList("pdf", "docx", "txt");
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10 MB in bytes
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    public static final String DEFAULT_TENANT_ID = "default";
 
     @Autowired
     private S3Service s3Service;
 
+    @Autowired(required = false)
+    private UploadSpoolService uploadSpoolService;
+
+    @Autowired(required = false)
+    private NearDuplicateIndex nearDuplicateIndex;
+
+    @Autowired(required = false)
+    private TenantQuotaService tenantQuotaService;
+
     /**
      * Processes file upload with validation and S3 storage.
+     * When the upload spool is enabled the file is staged locally and uploaded to S3 in the background.
+     * Near-duplicates of earlier text uploads are reported through the duplicateOf and similarity fields.
      *
      * @param file the multipart file to upload
      * @return UploadResponse containing the result of the upload operation
      */
     public UploadResponse processFileUpload(MultipartFile file) {
+        return processFileUpload(file, DEFAULT_TENANT_ID);
+    }
+
+    /**
+     * Processes file upload for a tenant with validation, quota enforcement and S3 storage.
+     * Quotas are checked before any bytes are sent to storage, and the file is stored under
+     * the tenant's key prefix. The tenant ID is only honoured when quotas are enabled, as the
+     * quota allow-list is the only check that it names a known tenant; otherwise every upload
+     * belongs to the default tenant.
+     *
+     * @param file the multipart file to upload
+     * @param tenantId the tenant uploading the file, or null for the default tenant
+     * @return UploadResponse containing the result of the upload operation
+     */
+    public UploadResponse processFileUpload(MultipartFile file, String tenantId) {
+        if (tenantId == null || tenantQuotaService == null) {
+            tenantId = DEFAULT_TENANT_ID;
+        }
+        boolean quotaAcquired = false;
+        UploadResponse response;
+
         try {
             // Validate file
             UploadResponse validationResult = validateFile(file);
@@ -35,22 +75,59 @@ public class FileUploadService {
                 return validationResult;
             }
 
-            // Upload to S3
-            String fileId = s3Service.uploadFile(file);
+            if (!TENANT_ID_PATTERN.matcher(tenantId).matches()) {
+                return new UploadResponse(false, "Invalid tenant ID");
+            }
+
+            // Enforce tenant quotas; this also rejects tenants outside the allow-list before
+            // the tenant ID reaches the near-duplicate index or an S3 key
+            if (tenantQuotaService != null) {
+                TenantQuotaService.Decision decision = tenantQuotaService.tryAcquire(tenantId, file.getSize());
+                if (decision == TenantQuotaService.Decision.UNKNOWN_TENANT) {
+                    return new UploadResponse(false, "Unknown tenant");
+                }
+                if (decision == TenantQuotaService.Decision.REQUEST_QUOTA_EXCEEDED) {
+                    return new UploadResponse(false, "Request quota exceeded, please try again later");
+                }
+                if (decision == TenantQuotaService.Decision.STORAGE_QUOTA_EXCEEDED) {
+                    return new UploadResponse(false, "Storage quota exceeded");
+                }
+                quotaAcquired = true;
+            }
 
-            return new UploadResponse(
-                true,
-                "File uploaded successfully",
-                fileId,
-                file.getOriginalFilename(),
-                file.getSize()
-            );
+            if (uploadSpoolService != null) {
+                // Stage for write-behind upload when the spool is enabled
+                String fileId = uploadSpoolService.stage(file, tenantId);
 
+                response = new UploadResponse(
+                    true,
+                    "File accepted and queued for upload",
+                    fileId,
+                    file.getOriginalFilename(),
+                    file.getSize()
+                );
+            } else {
+                // Upload to S3
+                String fileId = s3Service.uploadFile(file, tenantId);
+
+                response = new UploadResponse(
+                    true,
+                    "File uploaded successfully",
+                    fileId,
+                    file.getOriginalFilename(),
+                    file.getSize()
+                );
+            }
         } catch (IOException e) {
+            releaseQuota(quotaAcquired, tenantId, file);
             return new UploadResponse(false, "Error reading file: " + e.getMessage());
         } catch (Exception e) {
+            releaseQuota(quotaAcquired, tenantId, file);
             return new UploadResponse(false, "Upload failed: " + e.getMessage());
         }
+
+        reportNearDuplicate(tenantId, file, response);
+        return response;
     }
 
     /**
@@ -78,6 +155,63 @@ public class FileUploadService {
         return new UploadResponse(true, "File validation passed");
     }
 
+    /**
+     * Reports whether an upload is a near-duplicate of an earlier upload by the same tenant and
+     * adds it to the index. This runs once the file is stored, so a failure here is only logged
+     * and never fails the upload.
+     * A match discloses the file ID of another upload, so detection only runs when quotas are
+     * enabled and the tenant therefore comes from the allow-list. Without quotas every caller
+     * shares the default tenant, and a match could point at someone else's file.
+     *
+     * @param tenantId the tenant uploading the file
+     * @param file the uploaded file
+     * @param response the successful upload response to annotate
+     */
+    private void reportNearDuplicate(String tenantId, MultipartFile file, UploadResponse response) {
+        // Only plain text is signed, as PDF and DOCX content would need text extraction first
+        if (nearDuplicateIndex == null || tenantQuotaService == null || !isTextFile(file.getOriginalFilename())) {
+            return;
+        }
+
+        try {
+            int[] signature = nearDuplicateIndex.signature(file.getBytes());
+            if (signature == null) {
+                return;
+            }
+            NearDuplicateIndex.Match match = nearDuplicateIndex.findNearDuplicate(tenantId, signature);
+            nearDuplicateIndex.add(tenantId, response.getFileId(), signature);
+            if (match != null) {
+                response.setDuplicateOf(match.getFileId());
+                response.setSimilarity(match.getSimilarity());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Near-duplicate check failed for {}", response.getFileId(), e);
+        }
+    }
+
+    /**
+     * Releases the storage reserved for an upload that failed.
+     *
+     * @param quotaAcquired whether storage was reserved for the upload
+     * @param tenantId the tenant uploading the file
+     * @param file the file that failed to upload
+     */
+    private void releaseQuota(boolean quotaAcquired, String tenantId, MultipartFile file) {
+        if (quotaAcquired) {
+            tenantQuotaService.release(tenantId, file.getSize());
+        }
+    }
+
+    /**
+     * Checks if the file is a plain text file.
+     *
+     * @param filename the filename to check
+     * @return true if the file has a txt extension, false otherwise
+     */
+    private boolean isTextFile(String filename) {
+        return filename != null && filename.toLowerCase().endsWith(".txt");
+    }
+
     /**
      * Checks if the file has a valid extension.
      *
@@ -0,0 +1,430 @@
+package com.docfaq.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory near-duplicate index for uploaded documents.
+ * Documents are reduced to MinHash signatures over word shingles and bucketed with
+ * locality-sensitive hashing, so similar documents are found without comparing against
+ * every stored signature. All per-document state is kept in primitive arrays.
+ * The index is partitioned by tenant: each tenant gets an ordinal that is mixed into its band
+ * keys, so lookups only ever see the buckets of the tenant they are made for.
+ * The index holds at most dedup.max-documents documents; once full, each new document replaces
+ * the oldest one.
+ */
+@Service
+@ConditionalOnProperty(name = "dedup.enabled", havingValue = "true")
+public class NearDuplicateIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EMPTY = -1;
+
+    private final int numHashes;
+    private final int bands;
+    private final int rowsPerBand;
+    private final int shingleSize;
+    private final double threshold;
+    private final int maxDocuments;
+    private final long[] hashMultipliers;
+    private final long[] hashOffsets;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Signatures of all indexed documents, numHashes values per document. Documents occupy
+    // slots in insertion order, wrapping around once maxDocuments slots are in use
+    private int[] signatures;
+    private String[] fileIds;
+    private int[] tenants;
+    private int size;
+    private long added;
+    private final Map<String, Integer> tenantOrdinals = new HashMap<>();
+
+    // Per band: open-addressing table from band key to the most recent document in that
+    // bucket, and a chain linking each document to the previous and next one in the same bucket
+    private final long[][] bucketKeys;
+    private final int[][] bucketHeads;
+    private final int[] bucketCounts;
+    private final int[][] bucketNext;
+    private final int[][] bucketPrev;
+
+    @Autowired
+    public NearDuplicateIndex(@Value("${dedup.num-hashes:128}") int numHashes,
+                              @Value("${dedup.bands:32}") int bands,
+                              @Value("${dedup.shingle-size:3}") int shingleSize,
+                              @Value("${dedup.similarity-threshold:0.8}") double threshold,
+                              @Value("${dedup.max-documents:100000}") int maxDocuments) {
+        if (numHashes <= 0 || bands <= 0 || numHashes % bands != 0) {
+            throw new IllegalArgumentException("dedup.num-hashes must be a positive multiple of dedup.bands");
+        }
+        // Signatures of all documents share one array, so its length must fit in an int
+        if (maxDocuments <= 0 || (long) maxDocuments * numHashes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("dedup.max-documents must be positive and at most "
+                    + (Integer.MAX_VALUE - 8) / numHashes + " for " + numHashes + " hashes");
+        }
+        this.numHashes = numHashes;
+        this.bands = bands;
+        this.rowsPerBand = numHashes / bands;
+        this.shingleSize = shingleSize;
+        this.threshold = threshold;
+        this.maxDocuments = maxDocuments;
+
+        SplittableRandom random = new SplittableRandom(0x5DEECE66DL);
+        this.hashMultipliers = new long[numHashes];
+        this.hashOffsets = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            hashMultipliers[i] = random.nextLong() | 1L;
+            hashOffsets[i] = random.nextLong();
+        }
+
+        int capacity = Math.min(INITIAL_CAPACITY, maxDocuments);
+        this.signatures = new int[capacity * numHashes];
+        this.fileIds = new String[capacity];
+        this.tenants = new int[capacity];
+        this.bucketKeys = new long[bands][];
+        this.bucketHeads = new int[bands][];
+        this.bucketCounts = new int[bands];
+        this.bucketNext = new int[bands][];
+        this.bucketPrev = new int[bands][];
+        for (int band = 0; band < bands; band++) {
+            bucketKeys[band] = new long[INITIAL_CAPACITY * 2];
+            bucketHeads[band] = new int[INITIAL_CAPACITY * 2];
+            Arrays.fill(bucketHeads[band], EMPTY);
+            bucketNext[band] = new int[capacity];
+            bucketPrev[band] = new int[capacity];
+        }
+    }
+
+    /**
+     * Computes the MinHash signature of a document's text content.
+     *
+     * @param content the document content
+     * @return the signature, or null if the content contains no words
+     */
+    public int[] signature(byte[] content) {
+        long[] wordHashes = wordHashes(new String(content, StandardCharsets.UTF_8));
+        int wordCount = (int) wordHashes[wordHashes.length - 1];
+        if (wordCount == 0) {
+            return null;
+        }
+
+        int[] signature = new int[numHashes];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        int shingles = Math.max(1, wordCount - shingleSize + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 0;
+            for (int i = start; i < Math.min(start + shingleSize, wordCount); i++) {
+                shingle = mix(shingle * 31 + wordHashes[i]);
+            }
+            for (int i = 0; i < numHashes; i++) {
+                int value = (int) ((hashMultipliers[i] * shingle + hashOffsets[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Finds the tenant's most similar indexed document whose estimated similarity reaches the threshold.
+     *
+     * @param tenantId the tenant whose documents are searched
+     * @param signature the signature to look up
+     * @return the best match, or null if there is no near-duplicate
+     */
+    public Match findNearDuplicate(String tenantId, int[] signature) {
+        lock.readLock().lock();
+        try {
+            Integer tenant = tenantOrdinals.get(tenantId);
+            if (tenant == null) {
+                return null;
+            }
+
+            int best = EMPTY;
+            double bestSimilarity = threshold;
+
+            for (int band = 0; band < bands; band++) {
+                int doc = lookupBucket(band, bandKey(signature, 0, band, tenant));
+                while (doc != EMPTY) {
+                    // Buckets are keyed per tenant, so this only skips documents of a colliding key
+                    if (tenants[doc] != tenant) {
+                        doc = bucketNext[band][doc];
+                        continue;
+                    }
+                    double similarity = similarity(signature, doc);
+                    if (similarity >= bestSimilarity && (best == EMPTY || similarity > bestSimilarity)) {
+                        best = doc;
+                        bestSimilarity = similarity;
+                    }
+                    doc = bucketNext[band][doc];
+                }
+            }
+
+            return best == EMPTY ? null : new Match(fileIds[best], bestSimilarity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a document signature to the index, evicting the oldest document if the index is full.
+     *
+     * @param tenantId the tenant the document belongs to
+     * @param fileId the file ID of the document
+     * @param signature the document signature
+     */
+    public void add(String tenantId, String fileId, int[] signature) {
+        lock.writeLock().lock();
+        try {
+            int doc;
+            if (size < maxDocuments) {
+                if (size == fileIds.length) {
+                    grow();
+                }
+                doc = size++;
+            } else {
+                doc = (int) (added % maxDocuments);
+                evict(doc);
+            }
+            added++;
+
+            int tenant = tenantOrdinals.computeIfAbsent(tenantId, id -> tenantOrdinals.size());
+            System.arraycopy(signature, 0, signatures, doc * numHashes, numHashes);
+            fileIds[doc] = fileId;
+            tenants[doc] = tenant;
+
+            for (int band = 0; band < bands; band++) {
+                insertBucket(band, bandKey(signature, 0, band, tenant), doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return the index size
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lowercase alphanumeric words and hashes each word.
+     * The last array element holds the number of words.
+     */
+    private static long[] wordHashes(String text) {
+        long[] hashes = new long[16];
+        int count = 0;
+        long hash = 0;
+        boolean inWord = false;
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                hash = hash * 1099511628211L + Character.toLowerCase(c);
+                inWord = true;
+            } else if (inWord) {
+                if (count == hashes.length - 1) {
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                hashes[count++] = mix(hash);
+                hash = 0;
+                inWord = false;
+            }
+        }
+
+        hashes[hashes.length - 1] = count;
+        return hashes;
+    }
+
+    private double similarity(int[] signature, int doc) {
+        int offset = doc * numHashes;
+        int equal = 0;
+        for (int i = 0; i < numHashes; i++) {
+            if (signatures[offset + i] == signature[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / numHashes;
+    }
+
+    private long bandKey(int[] values, int offset, int band, int tenant) {
+        long key = ((long) tenant << 32) | band;
+        int start = offset + band * rowsPerBand;
+        for (int i = start; i < start + rowsPerBand; i++) {
+            key = mix(key * 31 + values[i]);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the table slot of a band key, or EMPTY if the key is not in the table.
+     */
+    private int findSlot(int band, long key) {
+        long[] keys = bucketKeys[band];
+        int[] heads = bucketHeads[band];
+        int mask = keys.length - 1;
+        for (int slot = (int) key & mask; heads[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return EMPTY;
+    }
+
+    private int lookupBucket(int band, long key) {
+        int slot = findSlot(band, key);
+        return slot == EMPTY ? EMPTY : bucketHeads[band][slot];
+    }
+
+    private void insertBucket(int band, long key, int doc) {
+        if ((bucketCounts[band] + 1) * 2 > bucketKeys[band].length) {
+            rehashBuckets(band);
+        }
+
+        long[] keys = bucketKeys[band];
+        int[] heads = bucketHeads[band];
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        while (heads[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (heads[slot] == EMPTY) {
+            keys[slot] = key;
+            bucketCounts[band]++;
+        } else {
+            bucketPrev[band][heads[slot]] = doc;
+        }
+        bucketNext[band][doc] = heads[slot];
+        bucketPrev[band][doc] = EMPTY;
+        heads[slot] = doc;
+    }
+
+    /**
+     * Unlinks a document from the buckets of all bands so its slot can be reused.
+     */
+    private void evict(int doc) {
+        for (int band = 0; band < bands; band++) {
+            int prev = bucketPrev[band][doc];
+            int next = bucketNext[band][doc];
+            if (next != EMPTY) {
+                bucketPrev[band][next] = prev;
+            }
+            if (prev != EMPTY) {
+                bucketNext[band][prev] = next;
+            } else {
+                int slot = findSlot(band, bandKey(signatures, doc * numHashes, band, tenants[doc]));
+                if (next != EMPTY) {
+                    bucketHeads[band][slot] = next;
+                } else {
+                    removeBucket(band, slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an empty bucket from a band's table, shifting later entries of the probe
+     * sequence back so lookups never stop at the hole.
+     */
+    private void removeBucket(int band, int slot) {
+        long[] keys = bucketKeys[band];
+        int[] heads = bucketHeads[band];
+        int mask = keys.length - 1;
+
+        int hole = slot;
+        heads[hole] = EMPTY;
+        for (int next = (hole + 1) & mask; heads[next] != EMPTY; next = (next + 1) & mask) {
+            int home = (int) keys[next] & mask;
+            // The entry may move back only if its home slot is not between the hole and itself
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                heads[hole] = heads[next];
+                heads[next] = EMPTY;
+                hole = next;
+            }
+        }
+        bucketCounts[band]--;
+    }
+
+    private void rehashBuckets(int band) {
+        long[] oldKeys = bucketKeys[band];
+        int[] oldHeads = bucketHeads[band];
+        long[] keys = new long[oldKeys.length * 2];
+        int[] heads = new int[oldHeads.length * 2];
+        Arrays.fill(heads, EMPTY);
+        int mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] != EMPTY) {
+                int slot = (int) oldKeys[i] & mask;
+                while (heads[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+
+        bucketKeys[band] = keys;
+        bucketHeads[band] = heads;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) fileIds.length * 2, maxDocuments);
+        signatures = Arrays.copyOf(signatures, capacity * numHashes);
+        fileIds = Arrays.copyOf(fileIds, capacity);
+        tenants = Arrays.copyOf(tenants, capacity);
+        for (int band = 0; band < bands; band++) {
+            bucketNext[band] = Arrays.copyOf(bucketNext[band], capacity);
+            bucketPrev[band] = Arrays.copyOf(bucketPrev[band], capacity);
+        }
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * A near-duplicate match and its estimated Jaccard similarity.
+     */
+    public static class Match {
+        private final String fileId;
+        private final double similarity;
+
+        public Match(String fileId, double similarity) {
+            this.fileId = fileId;
+            this.similarity = similarity;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+}
@@ -28,15 +28,16 @@ public class S3Service {
     }
 
     /**
-     * Uploads a file to S3 and returns the unique file ID.
+     * Uploads a file to S3 under the tenant's key prefix and returns the unique file ID.
      *
      * @param file the multipart file to upload
+     * @param tenantId the tenant the file belongs to
      * @return the unique file ID (S3 key)
      * @throws IOException if there's an error reading the file
      * @throws S3Exception if there's an error uploading to S3
      */
-    public String uploadFile(MultipartFile file) throws IOException, S3Exception {
-        String fileId = generateUniqueFileId(file.getOriginalFilename());
+    public String uploadFile(MultipartFile file, String tenantId) throws IOException, S3Exception {
+        String fileId = generateUniqueFileId(tenantId, file.getOriginalFilename());
         
         PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(bucketName)
@@ -50,13 +51,34 @@ public class S3Service {
         return fileId;
     }
 
+    /**
+     * Uploads in-memory content to S3 under an already assigned file ID.
+     *
+     * @param fileId the file ID (S3 key) to store the content under
+     * @param contentType the content type of the file, may be null
+     * @param content the file content
+     * @throws S3Exception if there's an error uploading to S3
+     */
+    public void uploadBytes(String fileId, String contentType, byte[] content) throws S3Exception {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileId)
+                .contentType(contentType)
+                .contentLength((long) content.length)
+                .build();
+
+        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(content));
+    }
+
     /**
      * Generates a unique file ID based on UUID and original filename.
+     * IDs are prefixed with the tenant ID so each tenant's objects share a key prefix.
      *
+     * @param tenantId the tenant the file belongs to
      * @param originalFilename the original filename
      * @return a unique file ID
      */
-    private String generateUniqueFileId(String originalFilename) {
+    static String generateUniqueFileId(String tenantId, String originalFilename) {
         String uuid = UUID.randomUUID().toString();
         String extension = "";
         
@@ -64,6 +86,6 @@ public class S3Service {
             extension = originalFilename.substring(originalFilename.lastIndexOf("."));
         }
         
-        return uuid + extension;
+        return tenantId + "/" + uuid + extension;
     }
 }
\ No newline at end of file
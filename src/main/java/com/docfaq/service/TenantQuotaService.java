@@ -0,0 +1,254 @@
+package com.docfaq.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service for per-tenant storage and request quota accounting.
+ * Usage counters are striped LongAdders so concurrent uploads do not contend on a shared
+ * counter; checks are therefore approximate and may overshoot a limit by the size of the
+ * uploads racing with it. Storage usage is checkpointed to a local file periodically and
+ * on shutdown, and restored on startup.
+ * Only tenants listed in quota.tenants are accepted, which keeps the usage map and the
+ * checkpoint bounded. Tenant IDs come from a request header, so the header must be set by
+ * a trusted gateway rather than by clients directly.
+ */
+@Service
+@ConditionalOnProperty(name = "quota.enabled", havingValue = "true")
+public class TenantQuotaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantQuotaService.class);
+
+    private static final long REQUEST_WINDOW_MS = 60000;
+
+    /**
+     * Outcome of a quota check.
+     */
+    public enum Decision {
+        ACCEPTED,
+        UNKNOWN_TENANT,
+        STORAGE_QUOTA_EXCEEDED,
+        REQUEST_QUOTA_EXCEEDED
+    }
+
+    // Fixed at construction from the tenant allow-list; only the counters change afterwards
+    private final Map<String, TenantUsage> usage;
+    private final long maxStorageBytes;
+    private final long maxRequestsPerMinute;
+    private final Path checkpointFile;
+    private final long checkpointIntervalMs;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public TenantQuotaService(@Value("${quota.max-storage-bytes}") long maxStorageBytes,
+                              @Value("${quota.max-requests-per-minute}") long maxRequestsPerMinute,
+                              @Value("${quota.tenants}") String[] tenants,
+                              @Value("${quota.checkpoint-file}") String checkpointFile,
+                              @Value("${quota.checkpoint-interval-ms:30000}") long checkpointIntervalMs) {
+        this.maxStorageBytes = maxStorageBytes;
+        this.maxRequestsPerMinute = maxRequestsPerMinute;
+        this.checkpointFile = Paths.get(checkpointFile);
+        this.checkpointIntervalMs = checkpointIntervalMs;
+
+        Map<String, TenantUsage> tenantUsage = new HashMap<>();
+        for (String tenantId : tenants) {
+            tenantUsage.put(tenantId.trim(), new TenantUsage());
+        }
+        this.usage = Map.copyOf(tenantUsage);
+    }
+
+    /**
+     * Restores usage from the last checkpoint and starts the checkpoint and request window tasks.
+     *
+     * @throws IOException if the checkpoint file exists but cannot be read
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        restore();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-quota-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::resetRequestWindow,
+                REQUEST_WINDOW_MS, REQUEST_WINDOW_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::checkpointQuietly,
+                checkpointIntervalMs, checkpointIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background tasks and writes a final checkpoint.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        checkpoint();
+    }
+
+    /**
+     * Counts a request for the tenant and reserves storage for an upload if both quotas allow it.
+     *
+     * @param tenantId the tenant ID
+     * @param bytes the size of the upload in bytes
+     * @return the quota decision; storage is only reserved when the upload is accepted
+     */
+    public Decision tryAcquire(String tenantId, long bytes) {
+        TenantUsage tenantUsage = usage.get(tenantId);
+        if (tenantUsage == null) {
+            return Decision.UNKNOWN_TENANT;
+        }
+
+        tenantUsage.requests.increment();
+        if (tenantUsage.requests.sum() > maxRequestsPerMinute) {
+            return Decision.REQUEST_QUOTA_EXCEEDED;
+        }
+
+        if (tenantUsage.storedBytes.sum() + bytes > maxStorageBytes) {
+            return Decision.STORAGE_QUOTA_EXCEEDED;
+        }
+
+        tenantUsage.storedBytes.add(bytes);
+        return Decision.ACCEPTED;
+    }
+
+    /**
+     * Releases storage reserved by an upload that did not complete.
+     *
+     * @param tenantId the tenant ID
+     * @param bytes the number of bytes to release
+     */
+    public void release(String tenantId, long bytes) {
+        TenantUsage tenantUsage = usage.get(tenantId);
+        if (tenantUsage != null) {
+            tenantUsage.storedBytes.add(-bytes);
+        }
+    }
+
+    /**
+     * Returns the storage currently accounted to a tenant.
+     *
+     * @param tenantId the tenant ID
+     * @return the stored bytes
+     */
+    public long getStoredBytes(String tenantId) {
+        TenantUsage tenantUsage = usage.get(tenantId);
+        return tenantUsage != null ? tenantUsage.storedBytes.sum() : 0;
+    }
+
+    /**
+     * Returns the number of requests a tenant made in the current request window.
+     *
+     * @param tenantId the tenant ID
+     * @return the request count
+     */
+    public long getRequestCount(String tenantId) {
+        TenantUsage tenantUsage = usage.get(tenantId);
+        return tenantUsage != null ? tenantUsage.requests.sum() : 0;
+    }
+
+    /**
+     * Writes the storage usage of all tenants to the checkpoint file.
+     * The file is replaced atomically so a crash never leaves a partial checkpoint.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void checkpoint() throws IOException {
+        Properties properties = new Properties();
+        usage.forEach((tenantId, tenantUsage) ->
+                properties.setProperty(tenantId, Long.toString(tenantUsage.storedBytes.sum())));
+
+        Path directory = checkpointFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, checkpointFile.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            properties.store(Channels.newOutputStream(channel), "Tenant storage usage in bytes");
+            // The contents must be on disk before the rename makes them the checkpoint
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void restore() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            properties.load(in);
+        }
+        int restored = 0;
+        for (String tenantId : properties.stringPropertyNames()) {
+            TenantUsage tenantUsage = usage.get(tenantId);
+            if (tenantUsage == null) {
+                logger.warn("Ignoring checkpointed usage of tenant {} that is no longer configured", tenantId);
+                continue;
+            }
+            long storedBytes;
+            try {
+                storedBytes = Long.parseLong(properties.getProperty(tenantId).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unparseable checkpointed usage of tenant {}: {}",
+                        tenantId, properties.getProperty(tenantId));
+                continue;
+            }
+            tenantUsage.storedBytes.add(storedBytes);
+            restored++;
+        }
+        logger.info("Restored quota usage for {} tenants", restored);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            logger.warn("Failed to checkpoint tenant quota usage", e);
+        }
+    }
+
+    private void resetRequestWindow() {
+        for (TenantUsage tenantUsage : usage.values()) {
+            tenantUsage.requests.reset();
+        }
+    }
+
+    /**
+     * Usage counters of a single tenant.
+     */
+    private static class TenantUsage {
+        private final LongAdder storedBytes = new LongAdder();
+        private final LongAdder requests = new LongAdder();
+    }
+}
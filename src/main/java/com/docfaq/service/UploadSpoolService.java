@@ -0,0 +1,795 @@
+package com.docfaq.service;
+
+import com.docfaq.model.SpoolStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind staging spool for file uploads.
+ * Uploads are appended to a local segmented log and acknowledged as soon as they are durable
+ * on disk. A background drainer pushes them to S3 with bounded parallelism, retrying transient
+ * failures with exponential backoff. Uploads rejected by S3 with a client error are moved to a
+ * dead-letter directory instead of being retried. A segment is deleted once every upload it
+ * holds has been drained, and entries that were not drained before shutdown are replayed on startup.
+ */
+@Service
+@ConditionalOnProperty(name = "upload.spool.enabled", havingValue = "true")
+public class UploadSpoolService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSpoolService.class);
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DONE = 2;
+    private static final int MAX_HEADER_LENGTH = 64 * 1024;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long RATE_SAMPLE_INTERVAL_MS = 5000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+    private static final long STAGE_TIMEOUT_MS = 30000;
+
+    private final S3Service s3Service;
+
+    @Autowired(required = false)
+    private TenantQuotaService tenantQuotaService;
+
+    private final Path spoolDirectory;
+    private final Path deadLetterDirectory;
+    private final long segmentSizeBytes;
+    private final int drainParallelism;
+    private final long retryInitialDelayMs;
+    private final long retryMaxDelayMs;
+
+    private final BlockingQueue<SpoolWrite> writeQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<SpoolEntry> drainQueue = new LinkedBlockingQueue<>();
+
+    // Log state below is only touched by the writer thread once it has started
+    // Entries written to the log without a matching DONE record
+    private final Map<String, SpoolEntry> outstanding = new HashMap<>();
+    private final Map<Long, Segment> segments = new TreeMap<>();
+    private Segment activeSegment;
+    private FileChannel writeChannel;
+    private long writePosition;
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong stagedCount = new AtomicLong();
+    private final AtomicLong drainedCount = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private final AtomicInteger segmentCount = new AtomicInteger();
+    private volatile double drainRatePerSecond;
+    private long lastSampleDrained;
+    private long lastSampleNanos;
+
+    private Thread writerThread;
+    private ExecutorService drainers;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    @Autowired
+    public UploadSpoolService(S3Service s3Service,
+                              @Value("${upload.spool.directory}") String spoolDirectory,
+                              @Value("${upload.spool.segment-size-bytes:67108864}") long segmentSizeBytes,
+                              @Value("${upload.spool.drain-parallelism:4}") int drainParallelism,
+                              @Value("${upload.spool.retry-initial-delay-ms:1000}") long retryInitialDelayMs,
+                              @Value("${upload.spool.retry-max-delay-ms:60000}") long retryMaxDelayMs) {
+        this.s3Service = s3Service;
+        this.spoolDirectory = Paths.get(spoolDirectory);
+        this.deadLetterDirectory = this.spoolDirectory.resolve(DEAD_LETTER_DIRECTORY);
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.drainParallelism = drainParallelism;
+        this.retryInitialDelayMs = retryInitialDelayMs;
+        this.retryMaxDelayMs = retryMaxDelayMs;
+    }
+
+    /**
+     * Replays the segments left over from a previous run, opens a new active segment and
+     * starts the writer and drainer threads.
+     *
+     * @throws IOException if the spool segments cannot be opened or read
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(spoolDirectory);
+        Files.createDirectories(deadLetterDirectory);
+
+        long nextSequence = replay();
+        openSegment(nextSequence);
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "upload-spool-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        drainers = Executors.newFixedThreadPool(drainParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "upload-spool-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < drainParallelism; i++) {
+            drainers.execute(this::runDrainer);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-spool-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastSampleNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::sampleDrainRate,
+                RATE_SAMPLE_INTERVAL_MS, RATE_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the drainer and writer threads. Entries that have not been drained yet stay
+     * in the spool segments and are replayed on the next start.
+     */
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        scheduler.shutdownNow();
+        drainers.shutdownNow();
+        drainers.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        // The writer is stopped with a marker rather than an interrupt, because interrupting
+        // a thread blocked in FileChannel I/O closes the channel
+        writeQueue.add(SpoolWrite.SHUTDOWN);
+        writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        failPendingWrites();
+
+        for (Segment segment : segments.values()) {
+            segment.readChannel.close();
+        }
+        writeChannel.close();
+    }
+
+    /**
+     * Stages a file in the spool and returns its file ID once the file is durable on disk.
+     * The file is uploaded to S3 under the returned ID in the background.
+     *
+     * @param file the multipart file to stage
+     * @param tenantId the tenant the file belongs to
+     * @return the unique file ID (S3 key) the file will be stored under
+     * @throws IOException if there's an error reading the file
+     * @throws IllegalStateException if the file could not be written to the spool in time
+     */
+    public String stage(MultipartFile file, String tenantId) throws IOException {
+        if (!running || !writerThread.isAlive()) {
+            throw new IllegalStateException("Upload spool is not running");
+        }
+
+        byte[] content = file.getBytes();
+        String fileId = S3Service.generateUniqueFileId(tenantId, file.getOriginalFilename());
+        SpoolWrite write = SpoolWrite.put(new SpoolEntry(fileId, tenantId, file.getContentType(), content.length), content);
+        writeQueue.add(write);
+
+        try {
+            write.completion.get(STAGE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            write.completion.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while staging upload", e);
+        } catch (TimeoutException e) {
+            // The writer may still be stuck on this write; abandon it unless it just completed
+            if (write.completion.cancel(false) || write.completion.isCompletedExceptionally()) {
+                throw new IllegalStateException("Timed out staging upload", e);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to stage upload: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        return fileId;
+    }
+
+    /**
+     * Returns a snapshot of the spool metrics.
+     *
+     * @return the current spool depth, drain counters and drain rate
+     */
+    public SpoolStats getStats() {
+        return new SpoolStats(
+            depth.get(),
+            pendingBytes.get(),
+            stagedCount.get(),
+            drainedCount.get(),
+            failedAttempts.get(),
+            deadLetterCount.get(),
+            segmentCount.get(),
+            drainRatePerSecond
+        );
+    }
+
+    /**
+     * Scans the spool segments in order, rebuilds the set of entries that still need to be
+     * drained and queues them. A torn or corrupt tail left by a crash is truncated, and
+     * segments without outstanding entries are deleted.
+     *
+     * @return the sequence number to use for the next segment
+     */
+    private long replay() throws IOException {
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            segmentFiles = files
+                    .filter(path -> isSegmentFile(path.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        long nextSequence = 0;
+        for (Path path : segmentFiles) {
+            String name = path.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = new Segment(sequence, path, FileChannel.open(path, StandardOpenOption.READ));
+            segments.put(sequence, segment);
+            nextSequence = sequence + 1;
+
+            long size = segment.readChannel.size();
+            long validLength = scanSegment(segment, size);
+            if (validLength < size) {
+                logger.warn("Discarding {} bytes of incomplete spool data from {}", size - validLength, path);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+            }
+        }
+
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.liveEntries == 0) {
+                deleteSegment(segment);
+            }
+        }
+
+        for (SpoolEntry entry : outstanding.values()) {
+            depth.incrementAndGet();
+            pendingBytes.addAndGet(entry.length);
+            drainQueue.add(entry);
+        }
+        if (!outstanding.isEmpty()) {
+            logger.info("Replaying {} staged uploads from spool", outstanding.size());
+        }
+        return nextSequence;
+    }
+
+    /**
+     * Applies the records of one segment to the outstanding entries.
+     *
+     * @return the length of the valid prefix of the segment
+     */
+    private long scanSegment(Segment segment, long size) throws IOException {
+        FileChannel channel = segment.readChannel;
+        long position = 0;
+
+        while (position < size) {
+            try {
+                int headerLength = readAt(channel, position, 4).getInt();
+                if (headerLength <= 0 || headerLength > MAX_HEADER_LENGTH) {
+                    break;
+                }
+
+                byte[] header = readAt(channel, position + 4, headerLength).array();
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+                byte type = in.readByte();
+                String fileId = in.readUTF();
+                String tenantId = in.readUTF();
+                String contentType = in.readUTF();
+                long length = in.readLong();
+
+                long payloadPosition = position + 4 + headerLength;
+                long end = payloadPosition + length + 4;
+                if (length < 0 || length > Integer.MAX_VALUE || end > size) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(header);
+                updateChecksum(channel, crc, payloadPosition, length);
+                if ((int) crc.getValue() != readAt(channel, payloadPosition + length, 4).getInt()) {
+                    break;
+                }
+
+                if (type == RECORD_PUT) {
+                    SpoolEntry entry = new SpoolEntry(fileId, tenantId, contentType.isEmpty() ? null : contentType, (int) length);
+                    entry.segment = segment;
+                    entry.position = payloadPosition;
+                    outstanding.put(fileId, entry);
+                    segment.liveEntries++;
+                } else if (type == RECORD_DONE) {
+                    SpoolEntry done = outstanding.remove(fileId);
+                    if (done != null) {
+                        done.segment.liveEntries--;
+                    }
+                } else {
+                    break;
+                }
+
+                position = end;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Writer loop. Takes every write queued since the last fsync and commits them as a
+     * single group, so concurrent uploads share one fsync.
+     */
+    private void runWriter() {
+        List<SpoolWrite> batch = new ArrayList<>();
+        boolean stopping = false;
+
+        while (!stopping) {
+            try {
+                batch.add(writeQueue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            writeQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            int shutdownIndex = batch.indexOf(SpoolWrite.SHUTDOWN);
+            if (shutdownIndex >= 0) {
+                // Writes queued behind the marker are failed by stop()
+                for (SpoolWrite write : batch.subList(shutdownIndex + 1, batch.size())) {
+                    write.completion.completeExceptionally(new IllegalStateException("Upload spool is shutting down"));
+                }
+                batch.subList(shutdownIndex, batch.size()).clear();
+                stopping = true;
+            }
+
+            // Writes abandoned by stage() after a timeout are not appended
+            batch.removeIf(write -> write.completion.isCancelled());
+
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (RuntimeException e) {
+                    // Fail this batch but keep the writer alive for the next one
+                    logger.error("Unexpected error committing upload spool batch", e);
+                    failBatch(batch, e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Appends a group of records to the active segment, fsyncs once and then completes them.
+     */
+    private void commit(List<SpoolWrite> batch) {
+        long batchStart = writePosition;
+        long[] payloadPositions = new long[batch.size()];
+
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                SpoolWrite write = batch.get(i);
+                payloadPositions[i] = append(write);
+            }
+            writeChannel.force(true);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to write to upload spool", e);
+            try {
+                writeChannel.truncate(batchStart);
+                writePosition = batchStart;
+            } catch (IOException truncateError) {
+                logger.error("Failed to roll back upload spool", truncateError);
+            }
+            failBatch(batch, e);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            SpoolWrite write = batch.get(i);
+            SpoolEntry entry = write.entry;
+
+            if (write.type == RECORD_PUT) {
+                entry.segment = activeSegment;
+                entry.position = payloadPositions[i];
+                outstanding.put(entry.fileId, entry);
+                activeSegment.liveEntries++;
+                depth.incrementAndGet();
+                pendingBytes.addAndGet(entry.length);
+                stagedCount.incrementAndGet();
+                drainQueue.add(entry);
+            } else {
+                SpoolEntry done = outstanding.remove(entry.fileId);
+                if (done != null) {
+                    depth.decrementAndGet();
+                    pendingBytes.addAndGet(-done.length);
+                    releaseSegmentEntry(done.segment);
+                }
+            }
+            if (!write.completion.complete(null) && write.type == RECORD_PUT) {
+                logger.warn("Staged file {} after its upload request had timed out", entry.fileId);
+            }
+        }
+
+        if (writePosition >= segmentSizeBytes) {
+            rollSegment();
+        }
+    }
+
+    /**
+     * Fails the uploads of a batch that could not be committed. Nobody waits on DONE records,
+     * so they are queued again after a delay instead; dropping them would keep their entries
+     * outstanding and their segments pinned.
+     */
+    private void failBatch(List<SpoolWrite> batch, Exception cause) {
+        for (SpoolWrite write : batch) {
+            if (write.type == RECORD_DONE) {
+                try {
+                    scheduler.schedule(() -> writeQueue.add(write), retryInitialDelayMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException shuttingDown) {
+                    // The entry stays outstanding in the log and is drained again after restart
+                }
+            } else {
+                write.completion.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Appends a single record at the current write position.
+     *
+     * @return the position of the record payload in the segment
+     */
+    private long append(SpoolWrite write) throws IOException {
+        SpoolEntry entry = write.entry;
+        byte[] content = write.content != null ? write.content : new byte[0];
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(headerBytes);
+        out.writeByte(write.type);
+        out.writeUTF(entry.fileId);
+        out.writeUTF(entry.tenantId != null ? entry.tenantId : "");
+        out.writeUTF(entry.contentType != null ? entry.contentType : "");
+        out.writeLong(content.length);
+        byte[] header = headerBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        crc.update(content);
+
+        ByteBuffer[] buffers = {
+            ByteBuffer.allocate(4).putInt(0, header.length),
+            ByteBuffer.wrap(header),
+            ByteBuffer.wrap(content),
+            ByteBuffer.allocate(4).putInt(0, (int) crc.getValue())
+        };
+
+        long recordStart = writePosition;
+        long remaining = 8L + header.length + content.length;
+        writeChannel.position(recordStart);
+        while (remaining > 0) {
+            remaining -= writeChannel.write(buffers);
+        }
+        writePosition = writeChannel.position();
+
+        return recordStart + 4 + header.length;
+    }
+
+    /**
+     * Opens a new segment and makes it the target of subsequent appends.
+     */
+    private void openSegment(long sequence) throws IOException {
+        Path path = spoolDirectory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        Segment segment = new Segment(sequence, path, FileChannel.open(path, StandardOpenOption.READ));
+        // Records fsynced to the segment are only durable once its directory entry is
+        forceDirectory(spoolDirectory);
+
+        segments.put(sequence, segment);
+        segmentCount.set(segments.size());
+        activeSegment = segment;
+        writeChannel = channel;
+        writePosition = 0;
+    }
+
+    /**
+     * Switches appends to a new segment once the active one has reached the segment size.
+     */
+    private void rollSegment() {
+        Segment previous = activeSegment;
+        FileChannel previousChannel = writeChannel;
+        try {
+            openSegment(previous.sequence + 1);
+            previousChannel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to roll upload spool segment", e);
+            return;
+        }
+
+        if (previous.liveEntries == 0) {
+            deleteSegment(previous);
+        }
+    }
+
+    /**
+     * Records that an entry of a segment has been drained, deleting the segment once it
+     * holds no outstanding entries. A DONE record stored in a deleted segment can leave an
+     * older segment's entry to be uploaded again on replay, which is harmless as uploads
+     * to the same key are idempotent.
+     */
+    private void releaseSegmentEntry(Segment segment) {
+        segment.liveEntries--;
+        if (segment.liveEntries == 0 && segment != activeSegment) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.sequence);
+        segmentCount.set(segments.size());
+        try {
+            segment.readChannel.close();
+            Files.deleteIfExists(segment.path);
+            forceDirectory(spoolDirectory);
+        } catch (IOException e) {
+            logger.warn("Failed to delete upload spool segment {}", segment.path, e);
+        }
+    }
+
+    /**
+     * Drainer loop. Uploads staged entries to S3 and records them as done.
+     */
+    private void runDrainer() {
+        while (!Thread.currentThread().isInterrupted()) {
+            SpoolEntry entry;
+            try {
+                entry = drainQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            drain(entry);
+        }
+    }
+
+    private void drain(SpoolEntry entry) {
+        byte[] content = null;
+        try {
+            content = readAt(entry.segment.readChannel, entry.position, entry.length).array();
+            s3Service.uploadBytes(entry.fileId, entry.contentType, content);
+            drainedCount.incrementAndGet();
+            writeQueue.add(SpoolWrite.done(entry));
+        } catch (S3Exception e) {
+            if (content != null && !isRetryable(e)) {
+                deadLetter(entry, content, e);
+            } else {
+                scheduleRetry(entry, e);
+            }
+        } catch (Exception e) {
+            scheduleRetry(entry, e);
+        }
+    }
+
+    /**
+     * Client errors such as AccessDenied or an invalid key will fail the same way on every
+     * attempt; timeouts and throttling are the exceptions.
+     */
+    private static boolean isRetryable(S3Exception e) {
+        int status = e.statusCode();
+        return status < 400 || status >= 500 || status == 408 || status == 429;
+    }
+
+    /**
+     * Moves an upload that S3 rejected permanently out of the spool into the dead-letter
+     * directory, so it no longer holds its segment.
+     */
+    private void deadLetter(SpoolEntry entry, byte[] content, S3Exception cause) {
+        Path target = deadLetterDirectory.resolve(entry.fileId.replace('/', '_'));
+        try {
+            Path tempFile = Files.createTempFile(deadLetterDirectory, "upload", ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(deadLetterDirectory);
+        } catch (IOException e) {
+            logger.error("Failed to move staged file {} to dead letter", entry.fileId, e);
+            scheduleRetry(entry, cause);
+            return;
+        }
+
+        deadLetterCount.incrementAndGet();
+        // The upload never reaches S3, so the storage reserved for it is given back
+        if (tenantQuotaService != null) {
+            tenantQuotaService.release(entry.tenantId, entry.length);
+        }
+        logger.error("S3 rejected staged file {} with status {}, moved to {}: {}",
+                entry.fileId, cause.statusCode(), target, cause.getMessage());
+        writeQueue.add(SpoolWrite.done(entry));
+    }
+
+    private void scheduleRetry(SpoolEntry entry, Exception cause) {
+        if (!running) {
+            return;
+        }
+        failedAttempts.incrementAndGet();
+        long delay = retryDelay(entry.attempts++);
+        logger.warn("Failed to upload staged file {} (attempt {}), retrying in {} ms: {}",
+                entry.fileId, entry.attempts, delay, cause.getMessage());
+        scheduler.schedule(() -> drainQueue.add(entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private long retryDelay(int attempts) {
+        long delay = retryInitialDelayMs << Math.min(attempts, 20);
+        return Math.min(delay, retryMaxDelayMs);
+    }
+
+    private void sampleDrainRate() {
+        long now = System.nanoTime();
+        long drained = drainedCount.get();
+        double elapsedSeconds = (now - lastSampleNanos) / 1_000_000_000.0;
+        if (elapsedSeconds > 0) {
+            drainRatePerSecond = (drained - lastSampleDrained) / elapsedSeconds;
+        }
+        lastSampleDrained = drained;
+        lastSampleNanos = now;
+    }
+
+    private void failPendingWrites() {
+        SpoolWrite write;
+        while ((write = writeQueue.poll()) != null) {
+            write.completion.completeExceptionally(new IllegalStateException("Upload spool is shutting down"));
+        }
+    }
+
+    /**
+     * Flushes directory entries to disk. Some platforms cannot open a directory as a channel,
+     * in which case the entries are left to the file system.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            logger.debug("Cannot open {} to flush its directory entries", directory, e);
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static boolean isSegmentFile(String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && name.length() == SEGMENT_PREFIX.length() + 20 + SEGMENT_SUFFIX.length();
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of upload spool");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void updateChecksum(FileChannel channel, CRC32 crc, long position, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long offset = 0;
+        while (offset < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - offset));
+            int read = channel.read(buffer, position + offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of upload spool");
+            }
+            buffer.flip();
+            crc.update(buffer);
+            offset += read;
+        }
+    }
+
+    /**
+     * A log segment and the number of its entries that have not been drained.
+     */
+    private static class Segment {
+        private final long sequence;
+        private final Path path;
+        private final FileChannel readChannel;
+        private int liveEntries;
+
+        private Segment(long sequence, Path path, FileChannel readChannel) {
+            this.sequence = sequence;
+            this.path = path;
+            this.readChannel = readChannel;
+        }
+    }
+
+    /**
+     * A staged upload and its location in the spool log.
+     */
+    private static class SpoolEntry {
+        private final String fileId;
+        private final String tenantId;
+        private final String contentType;
+        private final int length;
+        private Segment segment;
+        private long position;
+        private int attempts;
+
+        private SpoolEntry(String fileId, String tenantId, String contentType, int length) {
+            this.fileId = fileId;
+            this.tenantId = tenantId;
+            this.contentType = contentType;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A record waiting to be appended by the writer thread.
+     */
+    private static class SpoolWrite {
+        private static final SpoolWrite SHUTDOWN = new SpoolWrite((byte) 0, null, null);
+
+        private final byte type;
+        private final SpoolEntry entry;
+        private final byte[] content;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private SpoolWrite(byte type, SpoolEntry entry, byte[] content) {
+            this.type = type;
+            this.entry = entry;
+            this.content = content;
+        }
+
+        private static SpoolWrite put(SpoolEntry entry, byte[] content) {
+            return new SpoolWrite(RECORD_PUT, entry, content);
+        }
+
+        private static SpoolWrite done(SpoolEntry entry) {
+            return new SpoolWrite(RECORD_DONE, entry, null);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
@@ -50,7 +51,7 @@ class FileUploadControllerTest {
                 file.getSize()
         );
 
-        when(fileUploadService.processFileUpload(any())).thenReturn(successResponse);
+        when(fileUploadService.processFileUpload(any(), any())).thenReturn(successResponse);
 
         // Act & Assert
         mockMvc.perform(multipart("/api/upload")
@@ -79,7 +80,7 @@ class FileUploadControllerTest {
                 "Invalid file type. Only PDF, DOCX, and TXT files are allowed"
         );
 
-        when(fileUploadService.processFileUpload(any())).thenReturn(errorResponse);
+        when(fileUploadService.processFileUpload(any(), any())).thenReturn(errorResponse);
 
         // Act & Assert
         mockMvc.perform(multipart("/api/upload")
@@ -100,7 +101,7 @@ class FileUploadControllerTest {
                 "test content".getBytes()
         );
 
-        when(fileUploadService.processFileUpload(any())).thenThrow(new RuntimeException("Service error"));
+        when(fileUploadService.processFileUpload(any(), any())).thenThrow(new RuntimeException("Service error"));
 
         // Act & Assert
         mockMvc.perform(multipart("/api/upload")
@@ -111,6 +112,34 @@ class FileUploadControllerTest {
                 .andExpect(jsonPath("$.message").value("Internal server error: Service error"));
     }
 
+    @Test
+    void uploadFile_TenantHeader_ShouldPassTenantToService() throws Exception {
+        // Arrange
+        MockMultipartFile file = new MockMultipartFile(
+                "file", 
+                "test.pdf", 
+                "application/pdf", 
+                "test content".getBytes()
+        );
+
+        UploadResponse successResponse = new UploadResponse(
+                true, 
+                "File uploaded successfully", 
+                "acme/test-uuid.pdf", 
+                "test.pdf", 
+                file.getSize()
+        );
+
+        when(fileUploadService.processFileUpload(any(), eq("acme"))).thenReturn(successResponse);
+
+        // Act & Assert
+        mockMvc.perform(multipart("/api/upload")
+                .file(file)
+                .header("X-Tenant-Id", "acme"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fileId").value("acme/test-uuid.pdf"));
+    }
+
     @Test
     void getUploadStatus_ShouldReturnOk() throws Exception {
         // Act & Assert
@@ -118,4 +147,11 @@ class FileUploadControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string("Upload service is running"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getSpoolStats_SpoolDisabled_ShouldReturnNotFound() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/upload/spool/stats"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -8,10 +8,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -78,7 +84,7 @@ class FileUploadServiceTest {
     void processFileUpload_ValidPdfFile_ShouldSucceed() throws Exception {
         // Arrange
         String expectedFileId = "test-uuid.pdf";
-        when(s3Service.uploadFile(any(MultipartFile.class))).thenReturn(expectedFileId);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default"))).thenReturn(expectedFileId);
 
         // Act
         UploadResponse response = fileUploadService.processFileUpload(validPdfFile);
@@ -95,7 +101,7 @@ class FileUploadServiceTest {
     void processFileUpload_ValidDocxFile_ShouldSucceed() throws Exception {
         // Arrange
         String expectedFileId = "test-uuid.docx";
-        when(s3Service.uploadFile(any(MultipartFile.class))).thenReturn(expectedFileId);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default"))).thenReturn(expectedFileId);
 
         // Act
         UploadResponse response = fileUploadService.processFileUpload(validDocxFile);
@@ -111,7 +117,7 @@ class FileUploadServiceTest {
     void processFileUpload_ValidTxtFile_ShouldSucceed() throws Exception {
         // Arrange
         String expectedFileId = "test-uuid.txt";
-        when(s3Service.uploadFile(any(MultipartFile.class))).thenReturn(expectedFileId);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default"))).thenReturn(expectedFileId);
 
         // Act
         UploadResponse response = fileUploadService.processFileUpload(validTxtFile);
@@ -178,7 +184,7 @@ class FileUploadServiceTest {
     @Test
     void processFileUpload_S3UploadFailure_ShouldReturnError() throws Exception {
         // Arrange
-        when(s3Service.uploadFile(any(MultipartFile.class)))
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default")))
                 .thenThrow(new RuntimeException("S3 connection failed"));
 
         // Act
@@ -189,4 +195,229 @@ class FileUploadServiceTest {
         assertTrue(response.getMessage().contains("Upload failed"));
         assertNull(response.getFileId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void processFileUpload_NearDuplicateFile_ShouldReportOriginal() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"acme"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        ReflectionTestUtils.setField(fileUploadService, "nearDuplicateIndex", new NearDuplicateIndex(128, 32, 3, 0.8, 100000));
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("acme"))).thenReturn("acme/first-uuid.txt", "acme/second-uuid.txt");
+
+        // Act
+        UploadResponse first = fileUploadService.processFileUpload(validTxtFile, "acme");
+        UploadResponse second = fileUploadService.processFileUpload(validTxtFile, "acme");
+
+        // Assert
+        assertTrue(first.isSuccess());
+        assertNull(first.getDuplicateOf());
+        assertTrue(second.isSuccess());
+        assertEquals("acme/second-uuid.txt", second.getFileId());
+        assertEquals("acme/first-uuid.txt", second.getDuplicateOf());
+        assertEquals(1.0, second.getSimilarity());
+    }
+
+    @Test
+    void processFileUpload_NearDuplicateWithoutQuotas_ShouldNotReportIt() throws Exception {
+        // Arrange
+        NearDuplicateIndex nearDuplicateIndex = new NearDuplicateIndex(128, 32, 3, 0.8, 100000);
+        ReflectionTestUtils.setField(fileUploadService, "nearDuplicateIndex", nearDuplicateIndex);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default"))).thenReturn("default/first-uuid.txt", "default/second-uuid.txt");
+
+        // Act
+        fileUploadService.processFileUpload(validTxtFile);
+        UploadResponse second = fileUploadService.processFileUpload(validTxtFile);
+
+        // Assert
+        assertTrue(second.isSuccess());
+        assertNull(second.getDuplicateOf());
+        assertEquals(0, nearDuplicateIndex.size());
+    }
+
+    @Test
+    void processFileUpload_NearDuplicateOfOtherTenant_ShouldNotReportIt() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"acme", "globex"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        ReflectionTestUtils.setField(fileUploadService, "nearDuplicateIndex", new NearDuplicateIndex(128, 32, 3, 0.8, 100000));
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("acme"))).thenReturn("acme/first-uuid.txt");
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("globex"))).thenReturn("globex/second-uuid.txt");
+
+        // Act
+        fileUploadService.processFileUpload(validTxtFile, "acme");
+        UploadResponse response = fileUploadService.processFileUpload(validTxtFile, "globex");
+
+        // Assert
+        assertTrue(response.isSuccess());
+        assertNull(response.getDuplicateOf());
+    }
+
+    @Test
+    void processFileUpload_IndexFailure_ShouldKeepUploadAndQuota() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"default"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        NearDuplicateIndex nearDuplicateIndex = mock(NearDuplicateIndex.class);
+        ReflectionTestUtils.setField(fileUploadService, "nearDuplicateIndex", nearDuplicateIndex);
+        when(nearDuplicateIndex.signature(any())).thenReturn(new int[128]);
+        doThrow(new IllegalStateException("Index full"))
+                .when(nearDuplicateIndex).add(any(), any(), any());
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default"))).thenReturn("default/test-uuid.txt");
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validTxtFile);
+
+        // Assert
+        assertTrue(response.isSuccess());
+        assertEquals("default/test-uuid.txt", response.getFileId());
+        assertEquals(validTxtFile.getSize(), tenantQuotaService.getStoredBytes("default"));
+    }
+
+    @Test
+    void processFileUpload_NonTextFile_ShouldSkipNearDuplicateDetection() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"default"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        NearDuplicateIndex nearDuplicateIndex = new NearDuplicateIndex(128, 32, 3, 0.8, 100000);
+        ReflectionTestUtils.setField(fileUploadService, "nearDuplicateIndex", nearDuplicateIndex);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default")))
+                .thenReturn("default/first-uuid.pdf", "default/second-uuid.pdf");
+
+        // Act
+        fileUploadService.processFileUpload(validPdfFile);
+        UploadResponse second = fileUploadService.processFileUpload(validPdfFile);
+
+        // Assert
+        assertTrue(second.isSuccess());
+        assertNull(second.getDuplicateOf());
+        assertEquals(0, nearDuplicateIndex.size());
+    }
+
+    @Test
+    void processFileUpload_SpoolEnabled_ShouldStageInsteadOfUploading() throws Exception {
+        // Arrange
+        UploadSpoolService uploadSpoolService = mock(UploadSpoolService.class);
+        ReflectionTestUtils.setField(fileUploadService, "uploadSpoolService", uploadSpoolService);
+        when(uploadSpoolService.stage(any(MultipartFile.class), eq("default"))).thenReturn("default/test-uuid.pdf");
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile);
+
+        // Assert
+        assertTrue(response.isSuccess());
+        assertEquals("File accepted and queued for upload", response.getMessage());
+        assertEquals("default/test-uuid.pdf", response.getFileId());
+        assertEquals("test.pdf", response.getFileName());
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class), any());
+    }
+
+    @Test
+    void processFileUpload_SpoolFailure_ShouldReturnError() throws Exception {
+        // Arrange
+        UploadSpoolService uploadSpoolService = mock(UploadSpoolService.class);
+        ReflectionTestUtils.setField(fileUploadService, "uploadSpoolService", uploadSpoolService);
+        when(uploadSpoolService.stage(any(MultipartFile.class), eq("default")))
+                .thenThrow(new IllegalStateException("Failed to stage upload: disk full"));
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile);
+
+        // Assert
+        assertFalse(response.isSuccess());
+        assertEquals("Upload failed: Failed to stage upload: disk full", response.getMessage());
+    }
+
+    @Test
+    void processFileUpload_TenantId_ShouldUploadUnderTenant() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"acme"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("acme"))).thenReturn("acme/test-uuid.pdf");
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile, "acme");
+
+        // Assert
+        assertTrue(response.isSuccess());
+        assertEquals("acme/test-uuid.pdf", response.getFileId());
+    }
+
+    @Test
+    void processFileUpload_InvalidTenantId_ShouldFail() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"acme"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile, "../acme");
+
+        // Assert
+        assertFalse(response.isSuccess());
+        assertEquals("Invalid tenant ID", response.getMessage());
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class), any());
+    }
+
+    @Test
+    void processFileUpload_QuotasDisabled_ShouldIgnoreTenantId() throws Exception {
+        // Arrange
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("default"))).thenReturn("default/test-uuid.pdf");
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile, "acme");
+
+        // Assert
+        assertTrue(response.isSuccess());
+        assertEquals("default/test-uuid.pdf", response.getFileId());
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class), eq("acme"));
+    }
+
+    @Test
+    void processFileUpload_StorageQuotaExceeded_ShouldFailBeforeUpload() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(
+                validPdfFile.getSize(), 100, new String[] {"acme"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("acme"))).thenReturn("acme/test-uuid.pdf");
+
+        // Act
+        UploadResponse first = fileUploadService.processFileUpload(validPdfFile, "acme");
+        UploadResponse second = fileUploadService.processFileUpload(validPdfFile, "acme");
+
+        // Assert
+        assertTrue(first.isSuccess());
+        assertFalse(second.isSuccess());
+        assertEquals("Storage quota exceeded", second.getMessage());
+        verify(s3Service).uploadFile(any(MultipartFile.class), eq("acme"));
+    }
+
+    @Test
+    void processFileUpload_UnknownTenant_ShouldFailBeforeUpload() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"acme"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile, "initech");
+
+        // Assert
+        assertFalse(response.isSuccess());
+        assertEquals("Unknown tenant", response.getMessage());
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class), any());
+    }
+
+    @Test
+    void processFileUpload_S3UploadFailure_ShouldReleaseQuota() throws Exception {
+        // Arrange
+        TenantQuotaService tenantQuotaService = new TenantQuotaService(1024, 100, new String[] {"acme"}, "unused", 30000);
+        ReflectionTestUtils.setField(fileUploadService, "tenantQuotaService", tenantQuotaService);
+        when(s3Service.uploadFile(any(MultipartFile.class), eq("acme")))
+                .thenThrow(new RuntimeException("S3 connection failed"));
+
+        // Act
+        UploadResponse response = fileUploadService.processFileUpload(validPdfFile, "acme");
+
+        // Assert
+        assertFalse(response.isSuccess());
+        assertEquals(0, tenantQuotaService.getStoredBytes("acme"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.docfaq.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Memory and lookup latency benchmark for NearDuplicateIndex at 1M documents.
+ * Documents are synthetic texts drawn from a shared, skewed vocabulary, and every tenth one is
+ * a lightly edited copy of an earlier document, so band buckets are shared and lookups walk
+ * real chains. Skipped by default; run with:
+ * mvn test -Dtest=NearDuplicateIndexBenchmarkTest -Dbenchmark=true -DargLine=-Xmx4g
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class NearDuplicateIndexBenchmarkTest {
+
+    private static final int DOCUMENTS = 1_000_000;
+    private static final int LOOKUPS = 10_000;
+    private static final int NUM_HASHES = 128;
+    private static final int VOCABULARY = 20_000;
+    private static final int WORDS_PER_DOCUMENT = 200;
+    private static final int DUPLICATE_EVERY = 10;
+    // Three edited words change nine of ~200 shingles, a Jaccard similarity of about 0.91
+    private static final int EDITED_WORDS = 3;
+
+    @Test
+    void benchmark_OneMillionDocuments() {
+        Random random = new Random(42);
+        long heapBefore = usedHeap();
+
+        NearDuplicateIndex nearDuplicateIndex = new NearDuplicateIndex(NUM_HASHES, 32, 3, 0.8, DOCUMENTS);
+
+        long insertStart = System.nanoTime();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String text = i % DUPLICATE_EVERY == DUPLICATE_EVERY - 1
+                    ? edit(random, document(random.nextInt(i)))
+                    : document(i);
+            nearDuplicateIndex.add("default", "default/doc-" + i + ".txt", nearDuplicateIndex.signature(text.getBytes()));
+        }
+        long insertNanos = System.nanoTime() - insertStart;
+
+        long heapAfter = usedHeap();
+
+        // Half of the queries are edited copies of indexed original documents, half are new documents
+        int[][] queries = new int[LOOKUPS][];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String text = i % 2 == 0
+                    ? edit(random, document(random.nextInt(DOCUMENTS / DUPLICATE_EVERY) * DUPLICATE_EVERY))
+                    : document(DOCUMENTS + i);
+            queries[i] = nearDuplicateIndex.signature(text.getBytes());
+        }
+        // Warm up the lookup path before timing it
+        for (int[] query : queries) {
+            nearDuplicateIndex.findNearDuplicate("default", query);
+        }
+        int matched = 0;
+        long lookupStart = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i += 2) {
+            if (nearDuplicateIndex.findNearDuplicate("default", queries[i]) != null) {
+                matched++;
+            }
+        }
+        for (int i = 1; i < LOOKUPS; i += 2) {
+            nearDuplicateIndex.findNearDuplicate("default", queries[i]);
+        }
+        long lookupNanos = System.nanoTime() - lookupStart;
+
+        double recall = (double) matched / (LOOKUPS / 2);
+        System.out.printf("Documents: %d%n", nearDuplicateIndex.size());
+        System.out.printf("Insert time: %.1f s%n", insertNanos / 1e9);
+        System.out.printf("Index heap per document: %.0f bytes%n", (double) (heapAfter - heapBefore) / DOCUMENTS);
+        System.out.printf("Average lookup latency: %.1f us%n", lookupNanos / 1e3 / LOOKUPS);
+        System.out.printf("Near-duplicate recall: %.3f%n", recall);
+
+        assertEquals(DOCUMENTS, nearDuplicateIndex.size());
+        assertTrue(recall >= 0.9);
+    }
+
+    /**
+     * Generates the text of a document. Word ranks are log-uniform, so a few words are very
+     * common and many are rare, as in natural text.
+     */
+    private static String document(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_DOCUMENT; i++) {
+            int rank = (int) Math.pow(VOCABULARY, random.nextDouble());
+            text.append("word").append(rank).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String edit(Random random, String text) {
+        String[] words = text.split(" ");
+        for (int i = 0; i < EDITED_WORDS; i++) {
+            words[random.nextInt(words.length)] = "edit" + random.nextInt(VOCABULARY);
+        }
+        return String.join(" ", words);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
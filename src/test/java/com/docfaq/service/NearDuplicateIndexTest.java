@@ -0,0 +1,173 @@
+package com.docfaq.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for NearDuplicateIndex.
+ */
+class NearDuplicateIndexTest {
+
+    private NearDuplicateIndex nearDuplicateIndex;
+
+    private String document;
+
+    @BeforeEach
+    void setUp() {
+        nearDuplicateIndex = new NearDuplicateIndex(128, 32, 3, 0.8, 100000);
+        document = randomText(new Random(1), 500);
+    }
+
+    @Test
+    void findNearDuplicate_IdenticalDocument_ShouldMatch() {
+        // Arrange
+        nearDuplicateIndex.add("acme", "doc-1.txt", nearDuplicateIndex.signature(document.getBytes()));
+
+        // Act
+        NearDuplicateIndex.Match match = nearDuplicateIndex.findNearDuplicate("acme",
+                nearDuplicateIndex.signature(document.getBytes()));
+
+        // Assert
+        assertNotNull(match);
+        assertEquals("doc-1.txt", match.getFileId());
+        assertEquals(1.0, match.getSimilarity());
+    }
+
+    @Test
+    void findNearDuplicate_MinorEdits_ShouldMatch() {
+        // Arrange
+        nearDuplicateIndex.add("acme", "doc-1.txt", nearDuplicateIndex.signature(document.getBytes()));
+        String edited = "Exported by another tool\n" + document.toUpperCase() + "\nRevision 2";
+
+        // Act
+        NearDuplicateIndex.Match match = nearDuplicateIndex.findNearDuplicate("acme",
+                nearDuplicateIndex.signature(edited.getBytes()));
+
+        // Assert
+        assertNotNull(match);
+        assertEquals("doc-1.txt", match.getFileId());
+        assertTrue(match.getSimilarity() >= 0.8);
+    }
+
+    @Test
+    void findNearDuplicate_UnrelatedDocument_ShouldNotMatch() {
+        // Arrange
+        nearDuplicateIndex.add("acme", "doc-1.txt", nearDuplicateIndex.signature(document.getBytes()));
+        String unrelated = randomText(new Random(2), 500);
+
+        // Act
+        NearDuplicateIndex.Match match = nearDuplicateIndex.findNearDuplicate("acme",
+                nearDuplicateIndex.signature(unrelated.getBytes()));
+
+        // Assert
+        assertNull(match);
+    }
+
+    @Test
+    void findNearDuplicate_OtherTenant_ShouldNotMatch() {
+        // Arrange
+        nearDuplicateIndex.add("acme", "acme/doc-1.txt", nearDuplicateIndex.signature(document.getBytes()));
+        nearDuplicateIndex.add("globex", "globex/doc-1.txt",
+                nearDuplicateIndex.signature(randomText(new Random(2), 500).getBytes()));
+
+        // Act
+        NearDuplicateIndex.Match match = nearDuplicateIndex.findNearDuplicate("globex",
+                nearDuplicateIndex.signature(document.getBytes()));
+
+        // Assert
+        assertNull(match);
+    }
+
+    @Test
+    void add_ManyDocuments_ShouldGrowAndStillMatch() {
+        // Arrange
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            nearDuplicateIndex.add("acme", "doc-" + i + ".txt",
+                    nearDuplicateIndex.signature(randomText(random, 50).getBytes()));
+        }
+        nearDuplicateIndex.add("acme", "target.txt", nearDuplicateIndex.signature(document.getBytes()));
+
+        // Act
+        NearDuplicateIndex.Match match = nearDuplicateIndex.findNearDuplicate("acme",
+                nearDuplicateIndex.signature(document.getBytes()));
+
+        // Assert
+        assertEquals(3001, nearDuplicateIndex.size());
+        assertNotNull(match);
+        assertEquals("target.txt", match.getFileId());
+    }
+
+    @Test
+    void add_BeyondMaxDocuments_ShouldEvictOldest() {
+        // Arrange
+        NearDuplicateIndex smallIndex = new NearDuplicateIndex(128, 32, 3, 0.8, 100);
+        Random random = new Random(4);
+        smallIndex.add("acme", "oldest.txt", smallIndex.signature(document.getBytes()));
+        String[] texts = new String[100];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = randomText(random, 50);
+            smallIndex.add("acme", "doc-" + i + ".txt", smallIndex.signature(texts[i].getBytes()));
+        }
+
+        // Act
+        NearDuplicateIndex.Match evicted = smallIndex.findNearDuplicate("acme", smallIndex.signature(document.getBytes()));
+
+        // Assert
+        assertEquals(100, smallIndex.size());
+        assertNull(evicted);
+        for (int i = 0; i < texts.length; i++) {
+            NearDuplicateIndex.Match match = smallIndex.findNearDuplicate("acme", smallIndex.signature(texts[i].getBytes()));
+            assertNotNull(match);
+            assertEquals("doc-" + i + ".txt", match.getFileId());
+        }
+    }
+
+    @Test
+    void add_RepeatedEviction_ShouldKeepBucketsConsistent() {
+        // Arrange
+        NearDuplicateIndex smallIndex = new NearDuplicateIndex(128, 32, 3, 0.8, 10);
+        String[] texts = new String[5];
+        Random random = new Random(5);
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = randomText(random, 50);
+        }
+
+        // Act: the same texts cycle through the index, so evicted documents share buckets with live ones
+        for (int i = 0; i < 1000; i++) {
+            smallIndex.add("acme", "doc-" + i + ".txt", smallIndex.signature(texts[i % texts.length].getBytes()));
+        }
+
+        // Assert
+        assertEquals(10, smallIndex.size());
+        for (int i = 0; i < texts.length; i++) {
+            NearDuplicateIndex.Match match = smallIndex.findNearDuplicate("acme", smallIndex.signature(texts[i].getBytes()));
+            assertNotNull(match);
+            assertTrue(match.getFileId().matches("doc-99[0-9]\\.txt"));
+        }
+    }
+
+    @Test
+    void constructor_SignaturesExceedingArrayLimit_ShouldBeRejected() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateIndex(128, 32, 3, 0.8, 20_000_000));
+    }
+
+    @Test
+    void signature_NoWords_ShouldReturnNull() {
+        // Act & Assert
+        assertNull(nearDuplicateIndex.signature(" \n\t.,;".getBytes()));
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append("word").append(random.nextInt(10000)).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.docfaq.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TenantQuotaService.
+ */
+class TenantQuotaServiceTest {
+
+    private static final String[] TENANTS = {"acme", "globex"};
+
+    @TempDir
+    Path tempDir;
+
+    private String checkpointFile;
+
+    private TenantQuotaService tenantQuotaService;
+
+    @BeforeEach
+    void setUp() {
+        checkpointFile = tempDir.resolve("quota-usage.properties").toString();
+        tenantQuotaService = new TenantQuotaService(1000, 3, TENANTS, checkpointFile, 30000);
+    }
+
+    @Test
+    void tryAcquire_WithinQuota_ShouldAccept() {
+        // Act
+        TenantQuotaService.Decision decision = tenantQuotaService.tryAcquire("acme", 400);
+
+        // Assert
+        assertEquals(TenantQuotaService.Decision.ACCEPTED, decision);
+        assertEquals(400, tenantQuotaService.getStoredBytes("acme"));
+        assertEquals(1, tenantQuotaService.getRequestCount("acme"));
+    }
+
+    @Test
+    void tryAcquire_StorageQuotaExceeded_ShouldReject() {
+        // Arrange
+        tenantQuotaService.tryAcquire("acme", 800);
+
+        // Act
+        TenantQuotaService.Decision decision = tenantQuotaService.tryAcquire("acme", 400);
+
+        // Assert
+        assertEquals(TenantQuotaService.Decision.STORAGE_QUOTA_EXCEEDED, decision);
+        assertEquals(800, tenantQuotaService.getStoredBytes("acme"));
+    }
+
+    @Test
+    void tryAcquire_RequestQuotaExceeded_ShouldReject() {
+        // Arrange
+        for (int i = 0; i < 3; i++) {
+            tenantQuotaService.tryAcquire("acme", 1);
+        }
+
+        // Act
+        TenantQuotaService.Decision decision = tenantQuotaService.tryAcquire("acme", 1);
+
+        // Assert
+        assertEquals(TenantQuotaService.Decision.REQUEST_QUOTA_EXCEEDED, decision);
+        assertEquals(3, tenantQuotaService.getStoredBytes("acme"));
+    }
+
+    @Test
+    void tryAcquire_SeparateTenants_ShouldBeAccountedIndependently() {
+        // Arrange
+        tenantQuotaService.tryAcquire("acme", 1000);
+
+        // Act
+        TenantQuotaService.Decision decision = tenantQuotaService.tryAcquire("globex", 1000);
+
+        // Assert
+        assertEquals(TenantQuotaService.Decision.ACCEPTED, decision);
+        assertEquals(1000, tenantQuotaService.getStoredBytes("acme"));
+        assertEquals(1000, tenantQuotaService.getStoredBytes("globex"));
+    }
+
+    @Test
+    void tryAcquire_UnknownTenant_ShouldRejectWithoutTracking() {
+        // Act
+        TenantQuotaService.Decision decision = tenantQuotaService.tryAcquire("initech", 1);
+
+        // Assert
+        assertEquals(TenantQuotaService.Decision.UNKNOWN_TENANT, decision);
+        assertEquals(0, tenantQuotaService.getRequestCount("initech"));
+        assertEquals(0, tenantQuotaService.getStoredBytes("initech"));
+    }
+
+    @Test
+    void release_ShouldFreeStorage() {
+        // Arrange
+        tenantQuotaService.tryAcquire("acme", 1000);
+
+        // Act
+        tenantQuotaService.release("acme", 1000);
+
+        // Assert
+        assertEquals(0, tenantQuotaService.getStoredBytes("acme"));
+        assertEquals(TenantQuotaService.Decision.ACCEPTED, tenantQuotaService.tryAcquire("acme", 1000));
+    }
+
+    @Test
+    void start_AfterCheckpoint_ShouldRestoreConfiguredTenants() throws Exception {
+        // Arrange
+        tenantQuotaService.tryAcquire("acme", 600);
+        tenantQuotaService.tryAcquire("globex", 200);
+        tenantQuotaService.checkpoint();
+
+        // Act
+        TenantQuotaService restored = new TenantQuotaService(1000, 3, new String[] {"acme"}, checkpointFile, 30000);
+        restored.start();
+
+        // Assert
+        try {
+            assertEquals(600, restored.getStoredBytes("acme"));
+            assertEquals(0, restored.getStoredBytes("globex"));
+            assertEquals(0, restored.getRequestCount("acme"));
+        } finally {
+            restored.stop();
+        }
+    }
+
+    @Test
+    void start_UnparseableCheckpointEntry_ShouldSkipIt() throws Exception {
+        // Arrange
+        Files.writeString(Path.of(checkpointFile), "acme=600\nglobex=not-a-number\n");
+
+        // Act
+        tenantQuotaService.start();
+
+        // Assert
+        try {
+            assertEquals(600, tenantQuotaService.getStoredBytes("acme"));
+            assertEquals(0, tenantQuotaService.getStoredBytes("globex"));
+        } finally {
+            tenantQuotaService.stop();
+        }
+    }
+}
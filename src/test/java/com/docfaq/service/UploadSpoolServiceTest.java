@@ -0,0 +1,359 @@
+package com.docfaq.service;
+
+import com.docfaq.model.SpoolStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for UploadSpoolService.
+ */
+class UploadSpoolServiceTest {
+
+    @TempDir
+    Path spoolDirectory;
+
+    private UploadSpoolService uploadSpoolService;
+
+    private final MultipartFile validTxtFile = new MockMultipartFile(
+            "file",
+            "test.txt",
+            "text/plain",
+            "test content".getBytes()
+    );
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (uploadSpoolService != null) {
+            uploadSpoolService.stop();
+        }
+    }
+
+    @Test
+    void stage_ValidFile_ShouldUploadInBackground() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+
+        // Act
+        String fileId = uploadSpoolService.stage(validTxtFile, "default");
+
+        // Assert
+        assertTrue(fileId.startsWith("default/"));
+        assertTrue(fileId.endsWith(".txt"));
+        verify(s3Service, timeout(5000))
+                .uploadBytes(eq(fileId), eq("text/plain"), aryEq("test content".getBytes()));
+        SpoolStats stats = awaitDepth(0);
+        assertEquals(1, stats.getStagedCount());
+        assertEquals(1, stats.getDrainedCount());
+        assertEquals(0, stats.getPendingBytes());
+    }
+
+    @Test
+    void stage_S3Failure_ShouldRetryUntilUploaded() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        doThrow(new RuntimeException("S3 connection failed"))
+                .doNothing()
+                .when(s3Service).uploadBytes(any(), any(), any());
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+
+        // Act
+        String fileId = uploadSpoolService.stage(validTxtFile, "default");
+
+        // Assert
+        verify(s3Service, timeout(5000).times(2)).uploadBytes(eq(fileId), any(), any());
+        SpoolStats stats = awaitDepth(0);
+        assertEquals(1, stats.getFailedAttempts());
+        assertEquals(1, stats.getDrainedCount());
+    }
+
+    @Test
+    void start_PendingEntries_ShouldReplayAfterRestart() throws Exception {
+        // Arrange
+        S3Service unavailableS3Service = mock(S3Service.class);
+        doThrow(new RuntimeException("S3 connection failed"))
+                .when(unavailableS3Service).uploadBytes(any(), any(), any());
+        uploadSpoolService = createSpool(unavailableS3Service);
+        uploadSpoolService.start();
+        String fileId = uploadSpoolService.stage(validTxtFile, "default");
+        assertEquals(1, uploadSpoolService.getStats().getDepth());
+        uploadSpoolService.stop();
+
+        // Act
+        S3Service s3Service = mock(S3Service.class);
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+
+        // Assert
+        verify(s3Service, timeout(5000))
+                .uploadBytes(eq(fileId), eq("text/plain"), aryEq("test content".getBytes()));
+        awaitDepth(0);
+    }
+
+    @Test
+    void stage_S3ClientError_ShouldMoveToDeadLetterWithoutRetry() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        doThrow(S3Exception.builder().statusCode(403).message("Access Denied").build())
+                .when(s3Service).uploadBytes(any(), any(), any());
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+
+        // Act
+        String fileId = uploadSpoolService.stage(validTxtFile, "default");
+
+        // Assert
+        SpoolStats stats = awaitDepth(0);
+        assertEquals(1, stats.getDeadLetterCount());
+        assertEquals(0, stats.getFailedAttempts());
+        verify(s3Service, times(1)).uploadBytes(any(), any(), any());
+        Path deadLetter = spoolDirectory.resolve("dead-letter").resolve(fileId.replace('/', '_'));
+        assertArrayEquals("test content".getBytes(), Files.readAllBytes(deadLetter));
+    }
+
+    @Test
+    void stage_S3ClientError_ShouldReleaseReservedQuota() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        doThrow(S3Exception.builder().statusCode(403).message("Access Denied").build())
+                .when(s3Service).uploadBytes(any(), any(), any());
+        TenantQuotaService tenantQuotaService = mock(TenantQuotaService.class);
+        uploadSpoolService = createSpool(s3Service);
+        ReflectionTestUtils.setField(uploadSpoolService, "tenantQuotaService", tenantQuotaService);
+        uploadSpoolService.start();
+
+        // Act
+        uploadSpoolService.stage(validTxtFile, "acme");
+
+        // Assert
+        verify(tenantQuotaService, timeout(5000)).release("acme", "test content".length());
+    }
+
+    @Test
+    void stage_DrainedSegments_ShouldBeDeleted() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        uploadSpoolService = createSpool(s3Service, 1);
+        uploadSpoolService.start();
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            uploadSpoolService.stage(validTxtFile, "default");
+        }
+
+        // Assert
+        awaitStats(stats -> stats.getDepth() == 0 && stats.getSegmentCount() == 1);
+        assertEquals(1, countSegmentFiles());
+    }
+
+    @Test
+    void stage_StuckEntry_ShouldOnlyRetainItsOwnSegment() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        doThrow(new RuntimeException("S3 connection failed"))
+                .when(s3Service).uploadBytes(any(), any(), aryEq("stuck".getBytes()));
+        uploadSpoolService = createSpool(s3Service, 1);
+        uploadSpoolService.start();
+
+        // Act
+        uploadSpoolService.stage(new MockMultipartFile("file", "stuck.txt", "text/plain", "stuck".getBytes()), "default");
+        for (int i = 0; i < 5; i++) {
+            uploadSpoolService.stage(validTxtFile, "default");
+        }
+
+        // Assert
+        awaitStats(stats -> stats.getDepth() == 1 && stats.getDrainedCount() == 5 && stats.getSegmentCount() == 2);
+        assertEquals(2, countSegmentFiles());
+    }
+
+    @Test
+    void stage_FailedWrite_ShouldKeepWriterRunning() throws Exception {
+        // Arrange
+        S3Service s3Service = mock(S3Service.class);
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+        // A content type longer than the record header allows fails the write
+        MultipartFile unwritableFile = new MockMultipartFile("file", "bad.txt", "x".repeat(70000), "bad".getBytes());
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> uploadSpoolService.stage(unwritableFile, "default"));
+        String fileId = uploadSpoolService.stage(validTxtFile, "default");
+
+        // Assert
+        verify(s3Service, timeout(5000)).uploadBytes(eq(fileId), eq("text/plain"), aryEq("test content".getBytes()));
+        SpoolStats stats = awaitDepth(0);
+        assertEquals(1, stats.getStagedCount());
+    }
+
+    @Test
+    void drain_FailedDoneRecord_ShouldBeRequeued() throws Exception {
+        // Arrange
+        CountDownLatch uploadStarted = new CountDownLatch(1);
+        CountDownLatch releaseUpload = new CountDownLatch(1);
+        S3Service s3Service = mock(S3Service.class);
+        doAnswer(invocation -> {
+            uploadStarted.countDown();
+            releaseUpload.await();
+            return null;
+        }).when(s3Service).uploadBytes(any(), any(), any());
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+        uploadSpoolService.stage(validTxtFile, "default");
+        assertTrue(uploadStarted.await(5, TimeUnit.SECONDS));
+
+        // Act
+        FileChannel writeChannel = (FileChannel) ReflectionTestUtils.getField(uploadSpoolService, "writeChannel");
+        try (FileChannel readOnlyChannel = FileChannel.open(findSegmentFile(), StandardOpenOption.READ)) {
+            ReflectionTestUtils.setField(uploadSpoolService, "writeChannel", readOnlyChannel);
+            releaseUpload.countDown();
+            awaitStats(stats -> stats.getDrainedCount() == 1);
+            Thread.sleep(100);
+            assertEquals(1, uploadSpoolService.getStats().getDepth());
+            ReflectionTestUtils.setField(uploadSpoolService, "writeChannel", writeChannel);
+        }
+
+        // Assert
+        SpoolStats stats = awaitStats(current -> current.getDepth() == 0);
+        assertEquals(0, stats.getPendingBytes());
+    }
+
+    @Test
+    void start_GarbageAfterLastRecord_ShouldTruncateAndKeepRecords() throws Exception {
+        // Arrange
+        String[] fileIds = stageWhileUnavailable(2);
+        Path segment = findSegmentFile();
+        long validLength = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 0, 7, 42, 42, 42}, StandardOpenOption.APPEND);
+
+        // Act
+        S3Service unavailableS3Service = mock(S3Service.class);
+        doThrow(new RuntimeException("S3 connection failed"))
+                .when(unavailableS3Service).uploadBytes(any(), any(), any());
+        uploadSpoolService = createSpool(unavailableS3Service);
+        uploadSpoolService.start();
+
+        // Assert
+        assertEquals(validLength, Files.size(segment));
+        assertEquals(2, uploadSpoolService.getStats().getDepth());
+        verify(unavailableS3Service, timeout(5000).atLeastOnce()).uploadBytes(eq(fileIds[0]), any(), any());
+        verify(unavailableS3Service, timeout(5000).atLeastOnce()).uploadBytes(eq(fileIds[1]), any(), any());
+    }
+
+    @Test
+    void start_TornLastRecord_ShouldDiscardOnlyThatRecord() throws Exception {
+        // Arrange
+        String[] fileIds = stageWhileUnavailable(2);
+        Path segment = findSegmentFile();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // Act
+        S3Service s3Service = mock(S3Service.class);
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+
+        // Assert
+        verify(s3Service, timeout(5000)).uploadBytes(eq(fileIds[0]), eq("text/plain"), aryEq("test content".getBytes()));
+        awaitDepth(0);
+        verify(s3Service, never()).uploadBytes(eq(fileIds[1]), any(), any());
+    }
+
+    @Test
+    void start_ChecksumMismatch_ShouldDiscardCorruptRecord() throws Exception {
+        // Arrange
+        String[] fileIds = stageWhileUnavailable(2);
+        Path segment = findSegmentFile();
+        byte[] bytes = Files.readAllBytes(segment);
+        // Flip the last payload byte of the second record, just before its CRC
+        bytes[bytes.length - 5] ^= 0x01;
+        Files.write(segment, bytes);
+
+        // Act
+        S3Service s3Service = mock(S3Service.class);
+        uploadSpoolService = createSpool(s3Service);
+        uploadSpoolService.start();
+
+        // Assert
+        verify(s3Service, timeout(5000)).uploadBytes(eq(fileIds[0]), any(), any());
+        awaitDepth(0);
+        verify(s3Service, never()).uploadBytes(eq(fileIds[1]), any(), any());
+    }
+
+    private String[] stageWhileUnavailable(int count) throws Exception {
+        S3Service unavailableS3Service = mock(S3Service.class);
+        doThrow(new RuntimeException("S3 connection failed"))
+                .when(unavailableS3Service).uploadBytes(any(), any(), any());
+        uploadSpoolService = createSpool(unavailableS3Service);
+        uploadSpoolService.start();
+
+        String[] fileIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            fileIds[i] = uploadSpoolService.stage(validTxtFile, "default");
+        }
+        uploadSpoolService.stop();
+        uploadSpoolService = null;
+        return fileIds;
+    }
+
+    private Path findSegmentFile() throws Exception {
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log"))
+                    .findFirst()
+                    .orElseThrow();
+        }
+    }
+
+    private UploadSpoolService createSpool(S3Service s3Service) {
+        return createSpool(s3Service, 64 * 1024 * 1024);
+    }
+
+    private UploadSpoolService createSpool(S3Service s3Service, long segmentSizeBytes) {
+        return new UploadSpoolService(s3Service, spoolDirectory.toString(), segmentSizeBytes, 2, 10, 100);
+    }
+
+    private long countSegmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    private SpoolStats awaitDepth(int expectedDepth) throws InterruptedException {
+        SpoolStats stats = awaitStats(current -> current.getDepth() == expectedDepth);
+        assertEquals(expectedDepth, stats.getDepth());
+        return stats;
+    }
+
+    private SpoolStats awaitStats(Predicate<SpoolStats> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        SpoolStats stats = uploadSpoolService.getStats();
+        while (!condition.test(stats) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stats = uploadSpoolService.getStats();
+        }
+        assertTrue(condition.test(stats));
+        return stats;
+    }
+}